@@ -4,20 +4,43 @@ import com.vaadin.server.Resource;
 import org.vaadin.teemusa.sidemenu.SideMenu.MenuClickHandler;
 
 import java.io.Serializable;
-import java.util.Objects;
 
 /**
  * Data object containing the displayed information of a menu item.
+ * <p>
+ * Changes to the menu text and icon of an entry added to a {@link SideMenu}
+ * are shown in the menu automatically. All changes made during one request
+ * are sent to the client together in the response. Menu entries are compared
+ * by identity, so an entry can be renamed while it is in the menu.
  * 
  * @author Teemu Suo-Anttila
  */
 public class MenuEntry implements Serializable {
     private static final long serialVersionUID = 1;
 
+    /**
+     * Receives changes of the menu entries it owns.
+     */
+    interface Owner extends Serializable {
+
+        /**
+         * Called before the menu text of an entry changes.
+         */
+        void menuEntryRenaming(MenuEntry entry, String newText);
+
+        /**
+         * Called after the menu text or icon of an entry has changed.
+         */
+        void menuEntryChanged(MenuEntry entry);
+    }
+
     private String menuText;
     private Resource menuIcon;
     private MenuClickHandler clickHandler;
 
+    /* Menu to notify about changes, null if not in a menu */
+    private Owner owner;
+
     public MenuEntry(String menuText, Resource menuIcon,
             MenuClickHandler handler) {
         this.menuText = menuText;
@@ -29,8 +52,23 @@ public class MenuEntry implements Serializable {
         return menuText;
     }
 
+    /**
+     * Sets the menu text of this entry.
+     *
+     * @param menuText
+     *            the new menu text
+     * @throws IllegalArgumentException
+     *             if another entry in the same navigation menu already has
+     *             the given text
+     */
     public void setMenuText(String menuText) {
+        if (owner != null) {
+            owner.menuEntryRenaming(this, menuText);
+        }
         this.menuText = menuText;
+        if (owner != null) {
+            owner.menuEntryChanged(this);
+        }
     }
 
     public Resource getMenuIcon() {
@@ -39,6 +77,9 @@ public class MenuEntry implements Serializable {
 
     public void setMenuIcon(Resource menuIcon) {
         this.menuIcon = menuIcon;
+        if (owner != null) {
+            owner.menuEntryChanged(this);
+        }
     }
 
     public MenuClickHandler getClickHandler() {
@@ -49,16 +90,11 @@ public class MenuEntry implements Serializable {
         this.clickHandler = clickHandler;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        MenuEntry menuEntry = (MenuEntry) o;
-        return Objects.equals(menuText, menuEntry.menuText);
+    Owner getOwner() {
+        return owner;
     }
 
-    @Override
-    public int hashCode() {
-        return Objects.hash(menuText);
+    void setOwner(Owner owner) {
+        this.owner = owner;
     }
 }
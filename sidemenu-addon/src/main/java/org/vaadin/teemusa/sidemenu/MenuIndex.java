@@ -0,0 +1,270 @@
+package org.vaadin.teemusa.sidemenu;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Fuzzy match index over menu texts and menu paths of navigation menu entries.
+ * The index is updated incrementally as entries are added and removed.
+ * <p>
+ * A query matches an entry if its characters appear in the same order in the
+ * menu text or in the menu path (e.g. {@code "Parent / Child"}). Matches in the
+ * menu text rank above matches in the path, and consecutive characters and
+ * characters at the start of a word rank above scattered ones.
+ */
+final class MenuIndex implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    /* Separator between menu texts in a menu path */
+    static final String PATH_SEPARATOR = " / ";
+
+    /* Scoring weights */
+    private static final int MATCH_SCORE = 1;
+    private static final int CONSECUTIVE_BONUS = 4;
+    private static final int WORD_START_BONUS = 6;
+    private static final int MENU_TEXT_BONUS = 1 << 24;
+
+    private static final class Item implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final MenuEntry entry;
+        private String path;
+        private char[] menuText;
+        private char[] menuPath;
+        private long menuTextMask;
+        private long menuPathMask;
+        private int position;
+        /* Order of addition, for ordering equal matches */
+        private long sequence;
+
+        private Item(MenuEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private final List<Item> items = new ArrayList<>();
+    private final Map<MenuEntry, Item> itemsByEntry = new IdentityHashMap<>();
+    private long nextSequence;
+
+    /* Subsequence scans done by the last search */
+    private int lastScanCount;
+
+    /**
+     * Adds an entry to the index.
+     *
+     * @param entry
+     *            the entry to add
+     * @param parent
+     *            parent of the entry, or {@code null} for a root entry
+     */
+    void add(MenuEntry entry, MenuEntry parent) {
+        Item item = new Item(entry);
+        item.position = items.size();
+        item.sequence = nextSequence++;
+        update(item, parent != null ? itemsByEntry.get(parent) : null);
+        items.add(item);
+        itemsByEntry.put(entry, item);
+    }
+
+    /**
+     * Updates the menu text and path of an indexed entry. Paths of children
+     * are not updated.
+     *
+     * @param entry
+     *            the entry to update
+     * @param parent
+     *            parent of the entry, or {@code null} for a root entry
+     */
+    void update(MenuEntry entry, MenuEntry parent) {
+        Item item = itemsByEntry.get(entry);
+        if (item != null) {
+            update(item, parent != null ? itemsByEntry.get(parent) : null);
+        }
+    }
+
+    /**
+     * Removes an entry from the index. Children of the entry are not removed.
+     *
+     * @param entry
+     *            the entry to remove
+     */
+    void remove(MenuEntry entry) {
+        Item item = itemsByEntry.remove(entry);
+        if (item == null) {
+            return;
+        }
+        // Move the last item to the free slot to avoid shifting the list
+        Item last = items.remove(items.size() - 1);
+        if (last != item) {
+            last.position = item.position;
+            items.set(item.position, last);
+        }
+    }
+
+    /**
+     * Removes all entries from the index.
+     */
+    void clear() {
+        items.clear();
+        itemsByEntry.clear();
+    }
+
+    /**
+     * Finds the best matching entries for a query.
+     *
+     * @param query
+     *            the query text, empty or {@code null} matches all entries
+     * @param limit
+     *            maximum number of returned entries
+     * @return matching entries, best match first
+     */
+    List<MenuEntry> search(String query, int limit) {
+        if (limit <= 0 || items.isEmpty()) {
+            lastScanCount = 0;
+            return Collections.emptyList();
+        }
+        char[] chars = normalize(query);
+        long queryMask = mask(chars);
+
+        // Insertion into a small sorted top list; ties keep addition order
+        int[] topScores = new int[limit];
+        Item[] topItems = new Item[limit];
+        int count = 0;
+        int scans = 0;
+        for (Item item : items) {
+            // Reject entries missing a character of the query without a scan
+            if ((item.menuPathMask & queryMask) != queryMask) {
+                continue;
+            }
+            int score = -1;
+            if ((item.menuTextMask & queryMask) == queryMask) {
+                score = score(item.menuText, chars);
+                ++scans;
+            }
+            if (score >= 0) {
+                score += MENU_TEXT_BONUS;
+            } else {
+                // A path match can't beat a full list of menu text matches
+                if (count == limit
+                        && topScores[count - 1] >= MENU_TEXT_BONUS) {
+                    continue;
+                }
+                score = score(item.menuPath, chars);
+                ++scans;
+                if (score < 0) {
+                    continue;
+                }
+            }
+            if (count == limit && !ranksBefore(score, item,
+                    topScores[count - 1], topItems[count - 1])) {
+                continue;
+            }
+            int i = count < limit ? count++ : count - 1;
+            while (i > 0 && ranksBefore(score, item, topScores[i - 1],
+                    topItems[i - 1])) {
+                topScores[i] = topScores[i - 1];
+                topItems[i] = topItems[i - 1];
+                --i;
+            }
+            topScores[i] = score;
+            topItems[i] = item;
+        }
+
+        List<MenuEntry> result = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(topItems[i].entry);
+        }
+        lastScanCount = scans;
+        return result;
+    }
+
+    /**
+     * Gets the number of menu texts and paths scanned by the last search.
+     * Entries rejected by their characters are not scanned.
+     *
+     * @return number of scans
+     */
+    int getLastScanCount() {
+        return lastScanCount;
+    }
+
+    /*
+     * Items are moved around on removal, so equal scores are ordered by
+     * addition instead of by position.
+     */
+    private static boolean ranksBefore(int score, Item item, int otherScore,
+            Item other) {
+        return score > otherScore
+                || score == otherScore && item.sequence < other.sequence;
+    }
+
+    private void update(Item item, Item parent) {
+        String text = item.entry.getMenuText() != null
+                ? item.entry.getMenuText() : "";
+        item.path = parent != null ? parent.path + PATH_SEPARATOR + text
+                : text;
+        item.menuText = normalize(text);
+        item.menuPath = normalize(item.path);
+        item.menuTextMask = mask(item.menuText);
+        item.menuPathMask = mask(item.menuPath);
+    }
+
+    private static char[] normalize(String text) {
+        return text != null ? text.toLowerCase(Locale.ROOT).toCharArray()
+                : new char[0];
+    }
+
+    /**
+     * Computes a bit set of the characters in a text. Letters and digits have
+     * a bit of their own, other characters share the remaining bits.
+     */
+    private static long mask(char[] text) {
+        long mask = 0;
+        for (char c : text) {
+            int bit;
+            if (c >= 'a' && c <= 'z') {
+                bit = c - 'a';
+            } else if (c >= '0' && c <= '9') {
+                bit = 26 + c - '0';
+            } else {
+                bit = 36 + c % 28;
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    /**
+     * Scores a subsequence match of the query in the text.
+     *
+     * @return the score, or {@code -1} if the query doesn't match
+     */
+    private static int score(char[] text, char[] query) {
+        int score = 0;
+        int previous = -2;
+        int t = 0;
+        for (char c : query) {
+            while (t < text.length && text[t] != c) {
+                ++t;
+            }
+            if (t == text.length) {
+                return -1;
+            }
+            score += MATCH_SCORE;
+            if (t == previous + 1) {
+                score += CONSECUTIVE_BONUS;
+            }
+            if (t == 0 || !Character.isLetterOrDigit(text[t - 1])) {
+                score += WORD_START_BONUS;
+            }
+            previous = t++;
+        }
+        // Prefer shorter texts among equal matches
+        return score * 256 + Math.max(0, 255 - text.length);
+    }
+}
@@ -0,0 +1,147 @@
+package org.vaadin.teemusa.sidemenu;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Snapshot of the expanded and selected entries of a {@link SideMenu}. Entries
+ * are identified by their menu text. A snapshot can be converted to a compact
+ * byte array or string to be stored in a cookie or in the local storage of the
+ * browser.
+ *
+ * @since 3.0
+ */
+public final class MenuState implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    /* Version of the serialized format */
+    private static final byte FORMAT_VERSION = 1;
+
+    private final Set<String> expanded;
+    private final String selected;
+
+    /**
+     * Creates a new menu state.
+     *
+     * @param expanded
+     *            menu texts of the expanded entries, not {@code null}
+     * @param selected
+     *            menu text of the selected entry, or {@code null} if none
+     */
+    public MenuState(Collection<String> expanded, String selected) {
+        this.expanded = Collections
+                .unmodifiableSet(new LinkedHashSet<>(expanded));
+        this.selected = selected;
+    }
+
+    /**
+     * Gets the menu texts of the expanded entries.
+     *
+     * @return unmodifiable set of menu texts
+     */
+    public Set<String> getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Gets the menu text of the selected entry.
+     *
+     * @return optional of the selected menu text
+     */
+    public Optional<String> getSelected() {
+        return Optional.ofNullable(selected);
+    }
+
+    /**
+     * Converts this state to a compact byte array.
+     *
+     * @return serialized state
+     * @see #fromByteArray(byte[])
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeBoolean(selected != null);
+            if (selected != null) {
+                out.writeUTF(selected);
+            }
+            out.writeInt(expanded.size());
+            for (String text : expanded) {
+                out.writeUTF(text);
+            }
+        } catch (IOException e) {
+            // Writing to a byte array never fails
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Converts this state to a compact URL and cookie safe string.
+     *
+     * @return serialized state
+     * @see #fromString(String)
+     */
+    public String toSerializedString() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(toByteArray());
+    }
+
+    /**
+     * Restores a menu state from a byte array created with
+     * {@link #toByteArray()}.
+     *
+     * @param data
+     *            serialized state
+     * @return menu state
+     * @throws IllegalArgumentException
+     *             if the data is not a valid menu state
+     */
+    public static MenuState fromByteArray(byte[] data) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException(
+                        "Unsupported menu state format");
+            }
+            String selected = in.readBoolean() ? in.readUTF() : null;
+            int count = in.readInt();
+            if (count < 0 || count > data.length) {
+                throw new IllegalArgumentException("Malformed menu state");
+            }
+            Set<String> expanded = new LinkedHashSet<>();
+            for (int i = 0; i < count; ++i) {
+                expanded.add(in.readUTF());
+            }
+            return new MenuState(expanded, selected);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed menu state", e);
+        }
+    }
+
+    /**
+     * Restores a menu state from a string created with
+     * {@link #toSerializedString()}.
+     *
+     * @param data
+     *            serialized state
+     * @return menu state
+     * @throws IllegalArgumentException
+     *             if the data is not a valid menu state
+     */
+    public static MenuState fromString(String data) {
+        return fromByteArray(Base64.getUrlDecoder().decode(data));
+    }
+}
@@ -1,27 +1,44 @@
 package org.vaadin.teemusa.sidemenu;
 
-import com.vaadin.data.TreeData;
+import com.vaadin.event.ShortcutAction.KeyCode;
+import com.vaadin.event.ShortcutListener;
 import com.vaadin.icons.VaadinIcons;
 import com.vaadin.navigator.Navigator;
 import com.vaadin.server.Resource;
+import com.vaadin.server.SerializableSupplier;
+import com.vaadin.shared.Registration;
+import com.vaadin.shared.ui.ValueChangeMode;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Grid;
 import com.vaadin.ui.Grid.SelectionMode;
 import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.Image;
 import com.vaadin.ui.MenuBar;
 import com.vaadin.ui.MenuBar.Command;
 import com.vaadin.ui.MenuBar.MenuItem;
+import com.vaadin.ui.TextField;
 import com.vaadin.ui.Tree;
+import com.vaadin.ui.UI;
 import com.vaadin.ui.VerticalLayout;
+import com.vaadin.ui.Window;
 import com.vaadin.ui.themes.ValoTheme;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * A helper component to make it easy to create menus like the one in the
@@ -33,6 +50,10 @@ import java.util.Optional;
  * This component has modification to allow it to be used easily with
  * {@link Navigator}. Pass it as a parameter to the constructor like
  * {@code new Navigator(myUI, sideMenu)}.
+ * <p>
+ * The navigation menu entries are kept in a {@link SideMenuModel}. To share
+ * the entries between all UIs of a session, create the side menu with
+ * {@code new SideMenu(SideMenuModel.getSessionModel(session))}.
  *
  * @author Teemu Suo-Anttila
  */
@@ -51,6 +72,32 @@ public class SideMenu extends HorizontalLayout {
         void click();
     }
 
+    /**
+     * Defines how content components created by content factories are kept
+     * while they are not displayed.
+     *
+     * @since 3.0
+     * @see SideMenu#setContentRetention(ContentRetention)
+     */
+    public enum ContentRetention {
+        /**
+         * Content is kept until the menu entry is removed.
+         */
+        STRONG,
+
+        /**
+         * Content is kept with a soft reference and discarded when memory
+         * runs low.
+         */
+        SOFT,
+
+        /**
+         * Content is kept with a weak reference and discarded on the next
+         * garbage collection after it is no longer displayed.
+         */
+        WEAK
+    }
+
     /**
      * Interface to provide operations to existing menu items.
      *
@@ -96,6 +143,42 @@ public class SideMenu extends HorizontalLayout {
         MenuRegistration addSubMenu(String text, Resource icon,
                 MenuClickHandler clickHandler);
 
+        /**
+         * Adds a sub menu that displays content created by the given factory.
+         * The content is created when the sub menu is selected for the first
+         * time and reused according to the content retention of the side
+         * menu.
+         *
+         * @param text
+         *            the menu text for the sub menu
+         * @param contentFactory
+         *            the factory for the content of the sub menu
+         *
+         * @return a menu registration for the sub menu
+         * @since 3.0
+         */
+        MenuRegistration addContentSubMenu(String text,
+                SerializableSupplier<? extends Component> contentFactory);
+
+        /**
+         * Adds a sub menu with icon that displays content created by the given
+         * factory. The content is created when the sub menu is selected for
+         * the first time and reused according to the content retention of the
+         * side menu.
+         *
+         * @param text
+         *            the menu text for the sub menu
+         * @param icon
+         *            the menu icon for the sub menu
+         * @param contentFactory
+         *            the factory for the content of the sub menu
+         *
+         * @return a menu registration for the sub menu
+         * @since 3.0
+         */
+        MenuRegistration addContentSubMenu(String text, Resource icon,
+                SerializableSupplier<? extends Component> contentFactory);
+
         /**
          * Gets the menu entry for this menu.
          * 
@@ -111,25 +194,45 @@ public class SideMenu extends HorizontalLayout {
          * @return optional of sub menu entry
          */
         Optional<MenuRegistration> getSubMenu(String text);
+
+        /**
+         * Adds a keyboard shortcut that selects this menu entry. The shortcut
+         * calls the click handler directly without expanding the tree menu.
+         * The shortcut is active while the side menu is attached to a UI.
+         *
+         * @param keyCode
+         *            the key code, see {@link KeyCode}
+         * @param modifierKeys
+         *            the modifier keys, see
+         *            {@link com.vaadin.event.ShortcutAction.ModifierKey}
+         * @return a registration for removing the shortcut
+         * @since 3.0
+         */
+        Registration addShortcut(int keyCode, int... modifierKeys);
     }
 
     private final class MenuRegistrationImpl implements MenuRegistration {
 
         private MenuClickHandler removeMethod;
         private MenuEntry menuItem;
+        private final boolean treeItem;
         private boolean removed = false;
 
-        public MenuRegistrationImpl(MenuEntry menuItem,
+        public MenuRegistrationImpl(MenuEntry menuItem, boolean treeItem,
                 MenuClickHandler removeMethod) {
             this.menuItem = menuItem;
+            this.treeItem = treeItem;
             this.removeMethod = removeMethod;
         }
 
         @Override
         public void select() {
             assert !removed : "Actions on an already removed menu entry";
-            Optional.ofNullable(menuItem.getClickHandler())
-                    .ifPresent(MenuClickHandler::click);
+            if (treeItem) {
+                selectTreeItem(menuItem);
+            } else {
+                click(menuItem);
+            }
         }
 
         @Override
@@ -149,42 +252,218 @@ public class SideMenu extends HorizontalLayout {
         public MenuRegistration addSubMenu(String text, Resource icon,
                 MenuClickHandler clickHandler) {
             assert !removed : "Actions on an already removed menu entry";
-            ensureNoDuplicate(text);
             return addTreeItem(menuItem, text, icon, clickHandler);
         }
 
+        @Override
+        public MenuRegistration addContentSubMenu(String text,
+                SerializableSupplier<? extends Component> contentFactory) {
+            return addContentSubMenu(text, null, contentFactory);
+        }
+
+        @Override
+        public MenuRegistration addContentSubMenu(String text, Resource icon,
+                SerializableSupplier<? extends Component> contentFactory) {
+            assert !removed : "Actions on an already removed menu entry";
+            return addTreeItem(menuItem, text, icon,
+                    new LazyContent(contentFactory));
+        }
+
         @Override
         public MenuEntry getMenuEntry() {
-            treeMenu.getDataProvider().refreshItem(menuItem);
             return menuItem;
         }
 
         @Override
         public Optional<MenuRegistration> getSubMenu(String text) {
-            return treeMenuData.getChildren(menuItem).stream()
+            return model.getChildren(menuItem).stream()
                     .filter(menuEntry -> menuEntry.getMenuText().equals(text))
-                    .map(treeMenuItemToRegistration::get).findFirst();
+                    .map(SideMenu.this::registrationFor).findFirst();
+        }
+
+        @Override
+        public Registration addShortcut(int keyCode, int... modifierKeys) {
+            assert !removed : "Actions on an already removed menu entry";
+            return addMenuShortcut(menuItem,
+                    new ShortcutListener(menuItem.getMenuText(), keyCode,
+                            modifierKeys) {
+                        @Override
+                        public void handleAction(Object sender,
+                                Object target) {
+                            select();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * A keyboard shortcut owned by the side menu. The listener is registered
+     * to the UI while the side menu is attached.
+     */
+    private final class MenuShortcut implements Registration {
+
+        private final MenuEntry entry;
+        private final ShortcutListener listener;
+        private Registration uiRegistration;
+
+        public MenuShortcut(MenuEntry entry, ShortcutListener listener) {
+            this.entry = entry;
+            this.listener = listener;
+        }
+
+        private void attach(UI ui) {
+            uiRegistration = ui.addShortcutListener(listener);
+        }
+
+        private void detach() {
+            if (uiRegistration != null) {
+                uiRegistration.remove();
+                uiRegistration = null;
+            }
         }
 
-        private void ensureNoDuplicate(String text) {
-            getSubMenu(text).ifPresent(subMenu -> {
-                throw new IllegalArgumentException(String.format("Duplicate menu entry. '%s' already exists", text));
-            });
+        @Override
+        public void remove() {
+            detach();
+            shortcuts.remove(this);
+        }
+    }
+
+    /**
+     * Command for user menu items that calls the current click handler of the
+     * menu entry.
+     */
+    private final class UserMenuCommand implements Command {
+
+        private final MenuEntry entry;
+
+        public UserMenuCommand(MenuEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void menuSelected(MenuItem selectedItem) {
+            click(entry);
+        }
+    }
+
+    /**
+     * Click handler that creates content on the first click and shows it in
+     * the content area. The created content is kept by each side menu, so the
+     * handler can be shared through a {@link SideMenuModel}.
+     */
+    private static final class LazyContent implements MenuClickHandler {
+
+        private final SerializableSupplier<? extends Component> factory;
+
+        public LazyContent(
+                SerializableSupplier<? extends Component> factory) {
+            this.factory = Objects.requireNonNull(factory,
+                    "Content factory can't be null");
+        }
+
+        @Override
+        public void click() {
+            // The side menu to show the content in is not known here
+            throw new IllegalStateException(
+                    "Content menu entries can only be selected through a side menu");
+        }
+    }
+
+    /**
+     * Click handler that navigates to a navigation state. The navigator of
+     * the UI of the side menu handling the click is used, so the handler can
+     * be shared through a {@link SideMenuModel}. When called directly, the
+     * navigator of the current UI is used.
+     */
+    private static final class NavigationHandler implements MenuClickHandler {
+
+        private final String navigationState;
+
+        public NavigationHandler(String navigationState) {
+            this.navigationState = navigationState;
+        }
+
+        @Override
+        public void click() {
+            navigate(UI.getCurrent());
+        }
+
+        private void navigate(UI ui) {
+            if (ui == null || ui.getNavigator() == null) {
+                throw new IllegalStateException(
+                        "No UI with a navigator to navigate to '"
+                                + navigationState + "'");
+            }
+            ui.getNavigator().navigateTo(navigationState);
+        }
+    }
+
+    /**
+     * Content created by a content factory, kept according to the content
+     * retention of the side menu.
+     */
+    private static final class RetainedContent implements Serializable {
+
+        private final LazyContent source;
+        private final Component strongContent;
+        private final transient Reference<Component> content;
+
+        public RetainedContent(LazyContent source, Component strongContent,
+                Reference<Component> content) {
+            this.source = source;
+            this.strongContent = strongContent;
+            this.content = content;
+        }
+
+        private Component get() {
+            if (strongContent != null) {
+                return strongContent;
+            }
+            return content != null ? content.get() : null;
         }
     }
 
     /* Class name for hiding the menu when screen is too small */
     private static final String STYLE_VISIBLE = "valo-menu-visible";
 
+    /* Class name and size of the command palette window */
+    private static final String STYLE_COMMAND_PALETTE = "sidemenu-command-palette";
+    private static final int COMMAND_PALETTE_RESULTS = 10;
+
     /* Components to handle content and menus */
     private final VerticalLayout contentArea = new VerticalLayout();
     private final CssLayout menuArea = new CssLayout();
     private final CssLayout menuItemsLayout = new CssLayout();
     private final MenuBar userMenu = new MenuBar();
 
-    private final Tree<MenuEntry> treeMenu = new Tree<>();
-    private final TreeData<MenuEntry> treeMenuData = new TreeData<>();
-    private final Map<MenuEntry, MenuRegistration> treeMenuItemToRegistration = new HashMap<>();
+    private final Tree<MenuEntry> treeMenu;
+    private final SideMenuModel model;
+    private final Map<MenuEntry, MenuRegistrationImpl> treeMenuItemToRegistration = new HashMap<>();
+    private final Map<MenuEntry, MenuItem> userMenuEntryToItem = new HashMap<>();
+    private final Map<MenuEntry, RetainedContent> contents = new HashMap<>();
+    private final List<MenuShortcut> shortcuts = new ArrayList<>();
+
+    /* User menu entries changed during the current request */
+    private final Set<MenuEntry> changedUserEntries = new LinkedHashSet<>();
+    private final MenuEntry.Owner userMenuOwner = new MenuEntry.Owner() {
+        @Override
+        public void menuEntryRenaming(MenuEntry entry, String newText) {
+            // User menu texts don't need to be unique
+        }
+
+        @Override
+        public void menuEntryChanged(MenuEntry entry) {
+            if (changedUserEntries.isEmpty()) {
+                markAsDirty();
+            }
+            changedUserEntries.add(entry);
+        }
+    };
+
+    /* Menu state tracking and restoring */
+    private MenuEntry selectedEntry;
+    private MenuState pendingState;
 
     /* Quick access to user drop down menu */
     private MenuItem userItem;
@@ -193,12 +472,35 @@ public class SideMenu extends HorizontalLayout {
     private HorizontalLayout logoWrapper;
     private Image menuImage;
 
+    /* Retention of content created by content factories */
+    private ContentRetention contentRetention = ContentRetention.STRONG;
+
     /**
      * Constructor for creating a SideMenu component. This method sets up all
      * the components and styles needed for the side menu.
      */
     public SideMenu() {
+        this(new SideMenuModel());
+    }
+
+    /**
+     * Constructor for creating a SideMenu component that shows the navigation
+     * menu entries of the given model. All side menus created with the same
+     * model show the same entries.
+     *
+     * @param model
+     *            the navigation menu model, not {@code null}
+     * @since 3.0
+     * @see SideMenuModel#getSessionModel(com.vaadin.server.VaadinSession)
+     */
+    public SideMenu(SideMenuModel model) {
+        this(model, new Tree<>());
+    }
+
+    SideMenu(SideMenuModel model, Tree<MenuEntry> treeMenu) {
         super();
+        this.model = Objects.requireNonNull(model, "Model can't be null");
+        this.treeMenu = treeMenu;
         setSpacing(false);
         addStyleName(ValoTheme.UI_WITH_MENU);
         // Responsive.makeResponsive(this);
@@ -236,15 +538,14 @@ public class SideMenu extends HorizontalLayout {
 
         menuItemsLayout.addStyleName("valo-menuitems");
 
-        treeMenu.setTreeData(treeMenuData);
+        treeMenu.setDataProvider(model.getDataProvider());
         treeMenu.setSelectionMode(SelectionMode.NONE);
         treeMenu.setItemIconGenerator(MenuEntry::getMenuIcon);
         treeMenu.setItemCaptionGenerator(MenuEntry::getMenuText);
         treeMenu.setStyleGenerator(menuEntry -> "valo-menu-item");
         treeMenu.setWidth("200px");
         treeMenu.addItemClickListener(
-                event -> Optional.ofNullable(event.getItem().getClickHandler())
-                        .ifPresent(MenuClickHandler::click));
+                event -> selectTreeItem(event.getItem()));
         menuArea.addComponent(menuItemsLayout);
         menuItemsLayout.addComponent(treeMenu);
 
@@ -294,6 +595,82 @@ public class SideMenu extends HorizontalLayout {
         return addTreeItem(null, text, icon, handler);
     }
 
+    /**
+     * Gets the model containing the navigation menu entries of this menu.
+     *
+     * @return the navigation menu model
+     * @since 3.0
+     */
+    public SideMenuModel getModel() {
+        return model;
+    }
+
+    /**
+     * Adds a root level menu entry that displays content created by the given
+     * factory. The content is created when the entry is selected for the
+     * first time and reused according to the content retention of this menu.
+     *
+     * @param text
+     *            menu text
+     * @param contentFactory
+     *            factory for the content of the entry
+     *
+     * @return menu registration
+     * @since 3.0
+     */
+    public MenuRegistration addContentMenuItem(String text,
+            SerializableSupplier<? extends Component> contentFactory) {
+        return addContentMenuItem(text, null, contentFactory);
+    }
+
+    /**
+     * Adds a root level menu entry with given icon that displays content
+     * created by the given factory. The content is created when the entry is
+     * selected for the first time and reused according to the content
+     * retention of this menu.
+     *
+     * @param text
+     *            menu text
+     * @param icon
+     *            menu icon
+     * @param contentFactory
+     *            factory for the content of the entry
+     *
+     * @return menu registration
+     * @since 3.0
+     */
+    public MenuRegistration addContentMenuItem(String text, Resource icon,
+            SerializableSupplier<? extends Component> contentFactory) {
+        return addTreeItem(null, text, icon, new LazyContent(contentFactory));
+    }
+
+    /**
+     * Sets how content created by content factories is kept while it is not
+     * displayed. With {@link ContentRetention#SOFT} or
+     * {@link ContentRetention#WEAK} hidden content can be discarded and is
+     * created again when its entry is selected. Applies to content created
+     * after this call. The default is {@link ContentRetention#STRONG}.
+     *
+     * @param contentRetention
+     *            the content retention, not {@code null}
+     * @since 3.0
+     */
+    public void setContentRetention(ContentRetention contentRetention) {
+        this.contentRetention = Objects.requireNonNull(contentRetention,
+                "Content retention can't be null");
+    }
+
+    /**
+     * Gets how content created by content factories is kept while it is not
+     * displayed.
+     *
+     * @return the content retention
+     * @since 3.0
+     */
+    public ContentRetention getContentRetention() {
+        return contentRetention;
+    }
+
     /**
      * Add a sub tree item to the menu. Existing registration will be overridden.
      *
@@ -309,26 +686,85 @@ public class SideMenu extends HorizontalLayout {
     protected MenuRegistration addTreeItem(MenuEntry parent, String item,
             Resource icon, MenuClickHandler clickHandler) {
         MenuEntry entry = new MenuEntry(item, icon, clickHandler);
-        treeMenuData.addItem(parent, entry);
-        return registerTreeMenuItem(entry);
+        model.add(parent, entry);
+        return registrationFor(entry);
     }
 
-    private MenuRegistration registerTreeMenuItem(MenuEntry treeItem) {
-        treeMenu.getDataProvider().refreshAll();
-        MenuRegistration registration = new MenuRegistrationImpl(treeItem,
-                () -> {
-                    removeRegistration(treeItem);
-                    treeMenuData.removeItem(treeItem);
-                    treeMenu.getDataProvider().refreshAll();
-                });
-        treeMenuItemToRegistration.put(treeItem, registration);
-        return registration;
+    private MenuRegistration registrationFor(MenuEntry treeItem) {
+        return treeMenuItemToRegistration.computeIfAbsent(treeItem,
+                entry -> new MenuRegistrationImpl(entry, true,
+                        () -> removeTreeItem(entry)));
+    }
+
+    private void removeTreeItem(MenuEntry treeItem) {
+        List<MenuEntry> removed = model.remove(treeItem);
+        if (!isAttached()) {
+            // Attached menus are notified by the model
+            menuEntriesRemoved(removed);
+        }
+    }
+
+    /*
+     * Dispatch path for clicks and selections. Kept free of allocations since
+     * it runs on every menu interaction.
+     */
+    private void selectTreeItem(MenuEntry entry) {
+        selectedEntry = entry;
+        click(entry);
+    }
+
+    private void click(MenuEntry entry) {
+        MenuClickHandler handler = entry.getClickHandler();
+        if (handler instanceof LazyContent) {
+            showContent(entry, (LazyContent) handler);
+        } else if (handler instanceof NavigationHandler) {
+            ((NavigationHandler) handler).navigate(getUI());
+        } else if (handler != null) {
+            handler.click();
+        }
+    }
+
+    private void showContent(MenuEntry entry, LazyContent lazyContent) {
+        RetainedContent retained = contents.get(entry);
+        // Content of a replaced click handler is not reused
+        Component content = retained != null && retained.source == lazyContent
+                ? retained.get() : null;
+        if (content == null) {
+            content = lazyContent.factory.get();
+            contents.put(entry, retain(lazyContent, content));
+        }
+        setContent(content);
+    }
+
+    private RetainedContent retain(LazyContent source, Component content) {
+        switch (contentRetention) {
+        case SOFT:
+            return new RetainedContent(source, null,
+                    new SoftReference<>(content));
+        case WEAK:
+            return new RetainedContent(source, null,
+                    new WeakReference<>(content));
+        default:
+            return new RetainedContent(source, content, null);
+        }
     }
 
-    private void removeRegistration(MenuEntry remove) {
-        treeMenuItemToRegistration.remove(remove);
-        treeMenuData.getChildren(remove).stream().filter(Objects::nonNull)
-                .forEach(this::removeRegistration);
+    /**
+     * Called by the model when navigation menu entries have been removed.
+     */
+    void menuEntriesRemoved(Collection<MenuEntry> removed) {
+        for (MenuEntry entry : removed) {
+            MenuRegistrationImpl registration = treeMenuItemToRegistration
+                    .remove(entry);
+            if (registration != null) {
+                registration.removed = true;
+            }
+            removeShortcuts(entry);
+            contents.remove(entry);
+            if (entry == selectedEntry) {
+                selectedEntry = null;
+            }
+        }
     }
 
     /**
@@ -361,10 +797,22 @@ public class SideMenu extends HorizontalLayout {
      */
     public MenuRegistration addUserMenuItem(String text, Resource icon,
             final MenuClickHandler handler) {
-        Command menuCommand = selectedItem -> handler.click();
-        MenuItem menuItem = userItem.addItem(text, icon, menuCommand);
-        return new MenuRegistrationImpl(new MenuEntry(text, icon, handler),
-                () -> userItem.removeChild(menuItem));
+        MenuEntry entry = new MenuEntry(text, icon, handler);
+        MenuItem menuItem = userItem.addItem(text, icon,
+                new UserMenuCommand(entry));
+        userMenuEntryToItem.put(entry, menuItem);
+        entry.setOwner(userMenuOwner);
+        return new MenuRegistrationImpl(entry, false, () -> {
+            userItem.removeChild(menuItem);
+            removeUserMenuEntry(entry);
+        });
+    }
+
+    private void removeUserMenuEntry(MenuEntry entry) {
+        userMenuEntryToItem.remove(entry);
+        changedUserEntries.remove(entry);
+        entry.setOwner(null);
+        removeShortcuts(entry);
     }
 
     /**
@@ -439,6 +887,8 @@ public class SideMenu extends HorizontalLayout {
      */
     public void clearUserMenu() {
         userItem.removeChildren();
+        new ArrayList<>(userMenuEntryToItem.keySet())
+                .forEach(this::removeUserMenuEntry);
     }
 
     /**
@@ -446,8 +896,271 @@ public class SideMenu extends HorizontalLayout {
      */
     public void clearMenu() {
         menuItemsLayout.removeAllComponents();
-        treeMenuData.clear();
-        treeMenuItemToRegistration.clear();
+        List<MenuEntry> removed = model.clear();
+        if (!isAttached()) {
+            menuEntriesRemoved(removed);
+        }
+    }
+
+    /**
+     * Finds navigation menu entries whose menu text or menu path fuzzy matches
+     * the given query. The characters of the query must appear in the same
+     * order in the text, e.g. {@code "sst"} matches {@code "sub sub item"}.
+     * Matches in the menu text rank above matches in the path of parent menu
+     * texts.
+     *
+     * @param query
+     *            the text to search for
+     * @param limit
+     *            maximum number of results
+     * @return the matching menu registrations, best match first
+     * @since 3.0
+     */
+    public List<MenuRegistration> findMenuItems(String query, int limit) {
+        return model.search(query, limit).stream()
+                .map(this::registrationFor)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Opens a command palette window for finding and selecting navigation menu
+     * entries by typing. Selecting a result calls its click handler directly
+     * without expanding the tree menu.
+     *
+     * @throws IllegalStateException
+     *             if this side menu is not attached to a UI
+     * @since 3.0
+     */
+    public void openCommandPalette() {
+        UI ui = getUI();
+        if (ui == null) {
+            throw new IllegalStateException(
+                    "SideMenu must be attached to open the command palette");
+        }
+
+        Window palette = new Window();
+        palette.addStyleName(STYLE_COMMAND_PALETTE);
+        palette.setModal(true);
+        palette.setResizable(false);
+        palette.setWidth("400px");
+
+        TextField search = new TextField();
+        search.setWidth("100%");
+        search.setPlaceholder("Search menu");
+        search.setValueChangeMode(ValueChangeMode.LAZY);
+
+        Grid<MenuEntry> results = new Grid<>();
+        results.addColumn(MenuEntry::getMenuText);
+        results.setHeaderVisible(false);
+        results.setSelectionMode(SelectionMode.NONE);
+        results.setWidth("100%");
+        results.setHeightByRows(COMMAND_PALETTE_RESULTS);
+        results.setItems(model.search("", COMMAND_PALETTE_RESULTS));
+        results.addItemClickListener(event -> {
+            palette.close();
+            selectTreeItem(event.getItem());
+        });
+
+        search.addValueChangeListener(event -> results.setItems(
+                model.search(event.getValue(), COMMAND_PALETTE_RESULTS)));
+        palette.addShortcutListener(
+                new ShortcutListener("Select", KeyCode.ENTER, null) {
+                    @Override
+                    public void handleAction(Object sender, Object target) {
+                        List<MenuEntry> best = model.search(search.getValue(),
+                                1);
+                        if (!best.isEmpty()) {
+                            palette.close();
+                            selectTreeItem(best.get(0));
+                        }
+                    }
+                });
+
+        VerticalLayout content = new VerticalLayout(search, results);
+        palette.setContent(content);
+        ui.addWindow(palette);
+        search.focus();
+    }
+
+    /**
+     * Adds a keyboard shortcut for opening the command palette. The shortcut
+     * is active while the side menu is attached to a UI.
+     *
+     * @param keyCode
+     *            the key code, see {@link KeyCode}
+     * @param modifierKeys
+     *            the modifier keys, see
+     *            {@link com.vaadin.event.ShortcutAction.ModifierKey}
+     * @return a registration for removing the shortcut
+     * @see #openCommandPalette()
+     * @since 3.0
+     */
+    public Registration addCommandPaletteShortcut(int keyCode,
+            int... modifierKeys) {
+        return addMenuShortcut(null,
+                new ShortcutListener("Command palette", keyCode,
+                        modifierKeys) {
+                    @Override
+                    public void handleAction(Object sender, Object target) {
+                        openCommandPalette();
+                    }
+                });
+    }
+
+    private Registration addMenuShortcut(MenuEntry entry,
+            ShortcutListener listener) {
+        MenuShortcut shortcut = new MenuShortcut(entry, listener);
+        shortcuts.add(shortcut);
+        if (isAttached()) {
+            shortcut.attach(getUI());
+        }
+        return shortcut;
+    }
+
+    private void removeShortcuts(MenuEntry entry) {
+        shortcuts.removeIf(shortcut -> {
+            if (shortcut.entry == entry) {
+                shortcut.detach();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Gets the menu registration of the last selected navigation menu entry.
+     *
+     * @return optional of selected menu registration
+     * @since 3.0
+     */
+    public Optional<MenuRegistration> getSelectedMenuItem() {
+        return Optional.ofNullable(selectedEntry).map(this::registrationFor);
+    }
+
+    /**
+     * Gets a snapshot of the currently expanded and selected navigation menu
+     * entries. The snapshot can be stored and later restored with
+     * {@link #setMenuState(MenuState)}.
+     *
+     * @return menu state
+     * @since 3.0
+     */
+    public MenuState getMenuState() {
+        List<String> expanded = new ArrayList<>();
+        collectExpanded(model.getRootItems(), expanded);
+        return new MenuState(expanded,
+                selectedEntry != null ? selectedEntry.getMenuText() : null);
+    }
+
+    /**
+     * Restores expanded and selected navigation menu entries from a snapshot.
+     * If this menu is not yet attached, the state is applied in one pass when
+     * it is attached, so the initial population of the menu already contains
+     * the expanded entries. Entries that don't exist at that point are
+     * ignored. Expanded entries missing from the snapshot are collapsed, and
+     * the selection is cleared if the snapshot has no existing selected
+     * entry.
+     * <p>
+     * The selected entry is only marked as selected; its click handler is not
+     * called. Use {@code getSelectedMenuItem().ifPresent(MenuRegistration::select)}
+     * to also show its content.
+     *
+     * @param state
+     *            menu state to restore
+     * @since 3.0
+     */
+    public void setMenuState(MenuState state) {
+        Objects.requireNonNull(state, "Menu state can't be null");
+        pendingState = state;
+        if (isAttached()) {
+            applyPendingState();
+        }
+    }
+
+    @Override
+    public void beforeClientResponse(boolean initial) {
+        super.beforeClientResponse(initial);
+        if (changedUserEntries.isEmpty()) {
+            return;
+        }
+        for (MenuEntry entry : changedUserEntries) {
+            MenuItem menuItem = userMenuEntryToItem.get(entry);
+            menuItem.setText(entry.getMenuText());
+            menuItem.setIcon(entry.getMenuIcon());
+        }
+        changedUserEntries.clear();
+    }
+
+    @Override
+    public void attach() {
+        super.attach();
+        model.attach(this);
+        // Forget entries removed from a shared model while detached
+        menuEntriesRemoved(treeMenuItemToRegistration.keySet().stream()
+                .filter(entry -> !model.contains(entry))
+                .collect(Collectors.toList()));
+        if (selectedEntry != null && !model.contains(selectedEntry)) {
+            selectedEntry = null;
+        }
+        shortcuts.forEach(shortcut -> shortcut.attach(getUI()));
+        applyPendingState();
+    }
+
+    @Override
+    public void detach() {
+        shortcuts.forEach(MenuShortcut::detach);
+        model.detach(this);
+        super.detach();
+    }
+
+    private void applyPendingState() {
+        if (pendingState == null) {
+            return;
+        }
+        MenuState state = pendingState;
+        pendingState = null;
+
+        selectedEntry = null;
+        List<MenuEntry> toExpand = new ArrayList<>();
+        List<MenuEntry> toCollapse = new ArrayList<>();
+        restoreState(model.getRootItems(), state,
+                state.getSelected().orElse(null), toExpand, toCollapse);
+        if (!toCollapse.isEmpty()) {
+            treeMenu.collapse(toCollapse);
+        }
+        if (!toExpand.isEmpty()) {
+            // Parents come before their children, so one call is enough
+            treeMenu.expand(toExpand);
+        }
+    }
+
+    private void restoreState(List<MenuEntry> entries, MenuState state,
+            String selected, List<MenuEntry> toExpand,
+            List<MenuEntry> toCollapse) {
+        for (MenuEntry entry : entries) {
+            String key = entry.getMenuText();
+            if (selected != null && selected.equals(key)) {
+                selectedEntry = entry;
+            }
+            if (state.getExpanded().contains(key)) {
+                toExpand.add(entry);
+            } else if (treeMenu.isExpanded(entry)) {
+                toCollapse.add(entry);
+            }
+            restoreState(model.getChildren(entry), state, selected,
+                    toExpand, toCollapse);
+        }
+    }
+
+    private void collectExpanded(List<MenuEntry> entries,
+            List<String> expanded) {
+        for (MenuEntry entry : entries) {
+            // Children keep their expanded state under a collapsed parent
+            if (treeMenu.isExpanded(entry)) {
+                expanded.add(entry.getMenuText());
+            }
+            collectExpanded(model.getChildren(entry), expanded);
+        }
     }
 
     /**
@@ -479,7 +1192,7 @@ public class SideMenu extends HorizontalLayout {
     public MenuRegistration addNavigation(String text, Resource icon,
             final String navigationState) {
         return addMenuItem(text, icon,
-                () -> getUI().getNavigator().navigateTo(navigationState));
+                new NavigationHandler(navigationState));
     }
 
     /**
@@ -0,0 +1,246 @@
+package org.vaadin.teemusa.sidemenu;
+
+import com.vaadin.data.TreeData;
+import com.vaadin.data.provider.TreeDataProvider;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.communication.PushMode;
+import com.vaadin.ui.UI;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The navigation menu entries of one or more {@link SideMenu} components. By
+ * default every side menu has a model of its own. A model returned by
+ * {@link #getSessionModel(VaadinSession)} is shared by all side menus of a
+ * session that are created with it, so the entries are built and kept only
+ * once for all UIs (e.g. browser tabs) of the session.
+ * <p>
+ * Changes to a shared model are shown in all side menus using it. The side
+ * menu of the UI making the change is updated in the response to the
+ * current request. Other UIs are updated by their next push when push is
+ * enabled in {@link PushMode#AUTOMATIC} or {@link PushMode#MANUAL} mode, or
+ * with their next request otherwise. All changes made while the session is
+ * locked are sent to each UI together.
+ * <p>
+ * The expanded and selected entries, keyboard shortcuts and created content
+ * are kept separately by each side menu. Click handlers are shared, so they
+ * should not refer to a specific UI. Navigation and content entries are
+ * handled by the side menu in which they are selected. The model must only
+ * be used while holding the session lock.
+ *
+ * @since 3.0
+ */
+public final class SideMenuModel implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    private final TreeData<MenuEntry> treeData = new TreeData<>();
+    private final TreeDataProvider<MenuEntry> dataProvider = new TreeDataProvider<>(
+            treeData);
+    private final Map<String, MenuEntry> textToEntry = new HashMap<>();
+    private final MenuIndex menuIndex = new MenuIndex();
+
+    /* Side menus currently attached to a UI */
+    private final List<SideMenu> attachedMenus = new ArrayList<>();
+
+    /* Entries changed and UIs to push since the last response */
+    private final Set<MenuEntry> changedEntries = new LinkedHashSet<>();
+    private final Set<UI> pendingPushes = new HashSet<>();
+
+    private final MenuEntry.Owner entryOwner = new MenuEntry.Owner() {
+        @Override
+        public void menuEntryRenaming(MenuEntry entry, String newText) {
+            ensureNoDuplicate(newText, entry);
+            textToEntry.remove(entry.getMenuText(), entry);
+            textToEntry.put(newText, entry);
+        }
+
+        @Override
+        public void menuEntryChanged(MenuEntry entry) {
+            // Menu paths of the entry and its children include the text
+            updateMenuIndex(entry, treeData.getParent(entry));
+            if (changedEntries.isEmpty()) {
+                scheduleFlush();
+                scheduleUpdate();
+            }
+            changedEntries.add(entry);
+        }
+    };
+
+    /**
+     * Gets the shared model of the given session, creating it if needed.
+     *
+     * @param session
+     *            the session, not {@code null}
+     * @return the shared model of the session
+     */
+    public static SideMenuModel getSessionModel(VaadinSession session) {
+        Objects.requireNonNull(session, "Session can't be null");
+        assert session.hasLock() : "Session must be locked";
+        SideMenuModel model = session.getAttribute(SideMenuModel.class);
+        if (model == null) {
+            model = new SideMenuModel();
+            session.setAttribute(SideMenuModel.class, model);
+        }
+        return model;
+    }
+
+    /**
+     * Checks whether this model has no navigation menu entries. This can be
+     * used to populate a shared model only for the first UI of a session.
+     *
+     * @return {@code true} if there are no entries; {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return textToEntry.isEmpty();
+    }
+
+    TreeDataProvider<MenuEntry> getDataProvider() {
+        return dataProvider;
+    }
+
+    boolean contains(MenuEntry entry) {
+        return entry.getOwner() == entryOwner;
+    }
+
+    List<MenuEntry> getRootItems() {
+        return treeData.getRootItems();
+    }
+
+    List<MenuEntry> getChildren(MenuEntry parent) {
+        return treeData.getChildren(parent);
+    }
+
+    List<MenuEntry> search(String query, int limit) {
+        return menuIndex.search(query, limit);
+    }
+
+    void add(MenuEntry parent, MenuEntry entry) {
+        ensureNoDuplicate(entry.getMenuText(), null);
+        treeData.addItem(parent, entry);
+        textToEntry.put(entry.getMenuText(), entry);
+        menuIndex.add(entry, parent);
+        entry.setOwner(entryOwner);
+        dataProvider.refreshAll();
+        scheduleUpdate();
+    }
+
+    List<MenuEntry> remove(MenuEntry entry) {
+        List<MenuEntry> removed = new ArrayList<>();
+        collectSubtree(entry, removed);
+        removed.forEach(this::forget);
+        treeData.removeItem(entry);
+        dataProvider.refreshAll();
+        attachedMenus.forEach(menu -> menu.menuEntriesRemoved(removed));
+        scheduleUpdate();
+        return removed;
+    }
+
+    List<MenuEntry> clear() {
+        List<MenuEntry> removed = new ArrayList<>(textToEntry.values());
+        removed.forEach(this::forget);
+        treeData.clear();
+        dataProvider.refreshAll();
+        attachedMenus.forEach(menu -> menu.menuEntriesRemoved(removed));
+        scheduleUpdate();
+        return removed;
+    }
+
+    boolean hasChanges() {
+        return !changedEntries.isEmpty();
+    }
+
+    void attach(SideMenu menu) {
+        // Changes made while no menu was attached have no flush scheduled
+        flushChanges();
+        attachedMenus.add(menu);
+    }
+
+    void detach(SideMenu menu) {
+        attachedMenus.remove(menu);
+    }
+
+    /**
+     * Sends the changes of menu entries to all side menus using this model.
+     * Only the first call after a change does any work.
+     */
+    void flushChanges() {
+        if (changedEntries.isEmpty()) {
+            return;
+        }
+        changedEntries.forEach(dataProvider::refreshItem);
+        changedEntries.clear();
+    }
+
+    private void forget(MenuEntry entry) {
+        textToEntry.remove(entry.getMenuText(), entry);
+        menuIndex.remove(entry);
+        changedEntries.remove(entry);
+        entry.setOwner(null);
+    }
+
+    private void collectSubtree(MenuEntry entry, List<MenuEntry> entries) {
+        entries.add(entry);
+        treeData.getChildren(entry).stream().filter(Objects::nonNull)
+                .forEach(child -> collectSubtree(child, entries));
+    }
+
+    private void ensureNoDuplicate(String text, MenuEntry renamed) {
+        MenuEntry existing = textToEntry.get(text);
+        if (existing != null && existing != renamed) {
+            throw new IllegalArgumentException(String.format(
+                    "Duplicate menu entry. '%s' already exists", text));
+        }
+    }
+
+    private void updateMenuIndex(MenuEntry entry, MenuEntry parent) {
+        menuIndex.update(entry, parent);
+        treeData.getChildren(entry)
+                .forEach(child -> updateMenuIndex(child, entry));
+    }
+
+    /*
+     * Data communicators handle refresh events in access tasks, and pending
+     * access tasks are run once before the response is written. Flushing in
+     * an access task lets those tasks run before the same response.
+     */
+    private void scheduleFlush() {
+        UI ui = attachedMenus.isEmpty() ? null : attachedMenus.get(0).getUI();
+        VaadinSession session = ui != null ? ui.getSession() : null;
+        if (session != null) {
+            session.access(this::flushChanges);
+        }
+    }
+
+    /*
+     * UIs in automatic push mode are pushed when the session is unlocked.
+     * UIs in manual push mode get one push for all changes made while the
+     * session is locked.
+     */
+    private void scheduleUpdate() {
+        UI current = UI.getCurrent();
+        for (SideMenu menu : attachedMenus) {
+            UI ui = menu.getUI();
+            if (ui == null || ui == current || ui.getPushConfiguration()
+                    .getPushMode() != PushMode.MANUAL) {
+                continue;
+            }
+            if (pendingPushes.add(ui)) {
+                ui.access(() -> {
+                    pendingPushes.remove(ui);
+                    if (ui.getPushConnection() != null
+                            && ui.getPushConnection().isConnected()) {
+                        ui.push();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -1,19 +1,64 @@
 package org.vaadin.teemusa.sidemenu;
 
+import com.vaadin.data.provider.DataChangeEvent;
+import com.vaadin.data.provider.DataCommunicator;
+import com.vaadin.data.provider.DataChangeEvent.DataRefreshEvent;
+import com.vaadin.data.provider.DataProviderListener;
+import com.vaadin.icons.VaadinIcons;
+import com.vaadin.navigator.Navigator;
+import com.vaadin.server.ClientConnector;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.communication.PushConnection;
+import com.vaadin.shared.MouseEventDetails;
+import com.vaadin.shared.communication.PushMode;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.PushConfiguration;
+import com.vaadin.ui.Tree;
+import com.vaadin.ui.TreeGrid;
+import com.vaadin.ui.UI;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.vaadin.teemusa.sidemenu.SideMenu.MenuRegistration;
 
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SideMenuTest {
     @Mock
     private SideMenu.MenuClickHandler clickHandler;
 
+    /* Access tasks queued to sessions created by mockSession() */
+    private final Queue<Runnable> accessTasks = new ArrayDeque<>();
+
     @Test
     public void addTreeItemRootNotUserOriginated() {
         SideMenu sideMenu = new SideMenu();
@@ -56,4 +101,591 @@ public class SideMenuTest {
         sideMenu.addMenuItem("parent2", clickHandler).addSubMenu("item",
                 clickHandler);
     }
+
+    @Test
+    public void selectTracksSelectedMenuItem() {
+        SideMenu sideMenu = new SideMenu();
+        sideMenu.addMenuItem("first", clickHandler);
+        MenuRegistration second = sideMenu.addMenuItem("second", clickHandler);
+        second.select();
+        assertSame(second, sideMenu.getSelectedMenuItem().get());
+        assertEquals("second", sideMenu.getMenuState().getSelected().get());
+
+        second.remove();
+        assertFalse(sideMenu.getSelectedMenuItem().isPresent());
+    }
+
+    @Test
+    public void menuStateSerializationRoundTrip() {
+        MenuState state = new MenuState(Arrays.asList("parent", "child ä"),
+                "child ä");
+        MenuState restored = MenuState
+                .fromString(state.toSerializedString());
+        assertEquals(state.getExpanded(), restored.getExpanded());
+        assertEquals(state.getSelected(), restored.getSelected());
+
+        MenuState empty = MenuState.fromByteArray(
+                new MenuState(Arrays.asList(), null).toByteArray());
+        assertFalse(empty.getSelected().isPresent());
+        assertEquals(0, empty.getExpanded().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void menuStateMalformed() {
+        MenuState.fromByteArray(new byte[] { 1, 1 });
+    }
+
+    @Test
+    public void menuStateRestoredOnAttach() {
+        int[] expandCalls = new int[1];
+        int[] collapseCalls = new int[1];
+        Tree<MenuEntry> tree = new Tree<MenuEntry>() {
+            @Override
+            public void expand(Collection<MenuEntry> items) {
+                ++expandCalls[0];
+                super.expand(items);
+            }
+
+            @Override
+            public void collapse(Collection<MenuEntry> items) {
+                ++collapseCalls[0];
+                super.collapse(items);
+            }
+        };
+        SideMenu sideMenu = new SideMenu(new SideMenuModel(), tree);
+        MenuRegistration parent = sideMenu.addMenuItem("parent",
+                clickHandler);
+        MenuRegistration child = parent.addSubMenu("child", clickHandler);
+        MenuRegistration leaf = child.addSubMenu("leaf", clickHandler);
+        MenuRegistration other = sideMenu.addMenuItem("other", clickHandler);
+        other.addSubMenu("nested", clickHandler);
+
+        sideMenu.setMenuState(
+                new MenuState(Arrays.asList("parent", "child"), "leaf"));
+        assertEquals(0, expandCalls[0]);
+
+        attach(sideMenu, mockSession(), PushMode.DISABLED);
+        assertEquals(1, expandCalls[0]);
+        assertTrue(tree.isExpanded(parent.getMenuEntry()));
+        assertTrue(tree.isExpanded(child.getMenuEntry()));
+        assertFalse(tree.isExpanded(other.getMenuEntry()));
+        assertEquals(0, collapseCalls[0]);
+        assertSame(leaf, sideMenu.getSelectedMenuItem().get());
+
+        // Expanded children are kept under a collapsed parent
+        tree.collapse(parent.getMenuEntry());
+        MenuState state = sideMenu.getMenuState();
+        assertEquals(Arrays.asList("child"),
+                Arrays.asList(state.getExpanded().toArray()));
+        assertEquals("leaf", state.getSelected().get());
+
+        // Restoring while attached replaces the current state
+        sideMenu.setMenuState(
+                new MenuState(Arrays.asList("other"), "removed entry"));
+        assertEquals(1, collapseCalls[0]);
+        assertEquals(2, expandCalls[0]);
+        assertFalse(tree.isExpanded(child.getMenuEntry()));
+        assertTrue(tree.isExpanded(other.getMenuEntry()));
+        assertFalse(sideMenu.getSelectedMenuItem().isPresent());
+        assertEquals(Arrays.asList("other"), Arrays
+                .asList(sideMenu.getMenuState().getExpanded().toArray()));
+    }
+
+    @Test
+    public void findMenuItemsRanksMenuTextMatches() {
+        SideMenu sideMenu = new SideMenu();
+        MenuRegistration settings = sideMenu.addMenuItem("Settings",
+                clickHandler);
+        MenuRegistration user = settings.addSubMenu("User", clickHandler);
+        MenuRegistration setup = sideMenu.addMenuItem("Set up", clickHandler);
+        sideMenu.addMenuItem("Reports", clickHandler);
+
+        List<MenuRegistration> found = sideMenu.findMenuItems("set", 10);
+        assertEquals(Arrays.asList(setup, settings, user), found);
+
+        // Path only match
+        assertEquals(Arrays.asList(user),
+                sideMenu.findMenuItems("settings user", 10));
+        assertEquals(1, sideMenu.findMenuItems("", 1).size());
+    }
+
+    @Test
+    public void findMenuItemsAfterRemove() {
+        SideMenu sideMenu = new SideMenu();
+        MenuRegistration parent = sideMenu.addMenuItem("parent",
+                clickHandler);
+        parent.addSubMenu("child", clickHandler);
+        MenuRegistration other = sideMenu.addMenuItem("other", clickHandler);
+
+        parent.remove();
+        assertTrue(sideMenu.findMenuItems("child", 10).isEmpty());
+        assertEquals(Arrays.asList(other), sideMenu.findMenuItems("", 10));
+
+        sideMenu.clearMenu();
+        assertTrue(sideMenu.findMenuItems("", 10).isEmpty());
+    }
+
+    @Test
+    public void findMenuItemsScansOnlyCandidates() {
+        MenuIndex index = new MenuIndex();
+        for (int i = 0; i < 100; ++i) {
+            MenuEntry parent = new MenuEntry("Department " + i, null, null);
+            index.add(parent, null);
+            for (int j = 0; j < 99; ++j) {
+                index.add(new MenuEntry("Report " + j + " of department " + i,
+                        null, null), parent);
+            }
+        }
+
+        assertTrue(index.search("xyz", 10).isEmpty());
+        assertEquals(0, index.getLastScanCount());
+
+        List<MenuEntry> found = index.search("department 99 / report 98", 10);
+        assertEquals("Report 98 of department 99",
+                found.get(0).getMenuText());
+        int scans = index.getLastScanCount();
+        assertTrue("Scanned " + scans + " entries", scans < 1000);
+    }
+
+    @Test
+    public void findMenuItemsKeepsOrderAfterRemove() {
+        SideMenu sideMenu = new SideMenu();
+        MenuRegistration first = sideMenu.addMenuItem("item 1", clickHandler);
+        MenuRegistration second = sideMenu.addMenuItem("item 2",
+                clickHandler);
+        MenuRegistration third = sideMenu.addMenuItem("item 3", clickHandler);
+        MenuRegistration fourth = sideMenu.addMenuItem("item 4",
+                clickHandler);
+
+        first.remove();
+        assertEquals(Arrays.asList(second, third, fourth),
+                sideMenu.findMenuItems("", 10));
+        assertEquals(Arrays.asList(second, third),
+                sideMenu.findMenuItems("item", 2));
+    }
+
+    @Test
+    public void renameMenuEntry() {
+        SideMenu sideMenu = new SideMenu();
+        MenuRegistration parent = sideMenu.addMenuItem("parent",
+                clickHandler);
+        MenuRegistration child = parent.addSubMenu("child", clickHandler);
+
+        parent.getMenuEntry().setMenuText("renamed");
+        assertEquals(Arrays.asList(child),
+                sideMenu.findMenuItems("renamed child", 10));
+        assertSame(child, parent.getSubMenu("child").get());
+
+        // Old text is free again
+        sideMenu.addMenuItem("parent", clickHandler);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void menuEntryChangesRefreshedOncePerResponse() {
+        Tree<MenuEntry> tree = new Tree<>();
+        SideMenu sideMenu = new SideMenu(new SideMenuModel(), tree);
+        SideMenuModel model = sideMenu.getModel();
+        MenuEntry first = sideMenu.addMenuItem("first", clickHandler)
+                .getMenuEntry();
+        MenuEntry second = sideMenu.addMenuItem("second", clickHandler)
+                .getMenuEntry();
+        UI ui = attach(sideMenu, mockSession(), PushMode.DISABLED);
+        DataCommunicator<?> communicator = dataCommunicator(tree);
+
+        // Send the initial rows so that they can be refreshed
+        communicator.beforeClientResponse(true);
+        ui.getConnectorTracker().markAllConnectorsClean();
+        DataProviderListener<MenuEntry> listener = mock(
+                DataProviderListener.class);
+        model.getDataProvider().addDataProviderListener(listener);
+
+        first.setMenuText("renamed");
+        first.setMenuIcon(VaadinIcons.HOME);
+        first.setMenuText("renamed again");
+        first.setMenuIcon(VaadinIcons.USER);
+        second.setMenuIcon(VaadinIcons.HOME);
+        second.setMenuText("second renamed");
+        verify(listener, never()).onDataChange(any(DataChangeEvent.class));
+        assertTrue(model.hasChanges());
+
+        runPendingAccessTasks();
+        ArgumentCaptor<DataChangeEvent> events = ArgumentCaptor
+                .forClass(DataChangeEvent.class);
+        verify(listener, times(2)).onDataChange(events.capture());
+        assertEquals(Arrays.asList(first, second),
+                events.getAllValues().stream()
+                        .map(event -> ((DataRefreshEvent<MenuEntry>) event)
+                                .getItem())
+                        .collect(Collectors.toList()));
+        assertFalse(model.hasChanges());
+        // The rows are sent in the response of the request making the change
+        assertTrue(ui.getConnectorTracker().isDirty(communicator));
+
+        // Nothing left for the next response
+        runPendingAccessTasks();
+        verify(listener, times(2)).onDataChange(any(DataChangeEvent.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void renameMenuEntryToDuplicate() {
+        SideMenu sideMenu = new SideMenu();
+        sideMenu.addMenuItem("first", clickHandler);
+        sideMenu.addMenuItem("second", clickHandler).getMenuEntry()
+                .setMenuText("first");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void selectDoesNotAllocate() {
+        Assume.assumeTrue(ManagementFactory
+                .getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled());
+
+        Tree<MenuEntry> tree = new Tree<>();
+        SideMenu sideMenu = new SideMenu(new SideMenuModel(), tree);
+        int[] clicks = new int[1];
+        MenuRegistration item = sideMenu.addMenuItem("parent", null)
+                .addSubMenu("item", () -> ++clicks[0]);
+        MenuRegistration userItem = sideMenu.addUserMenuItem("user",
+                () -> ++clicks[0]);
+
+        // The item click listener of the tree, called with one event that
+        // is created in advance, as the framework creates an event per click
+        Tree.ItemClickListener<MenuEntry> treeClickListener = (Tree.ItemClickListener<MenuEntry>) tree
+                .getListeners(Tree.ItemClick.class).iterator().next();
+        Tree.ItemClick<MenuEntry> treeClick = new Tree.ItemClick<MenuEntry>(
+                tree, item.getMenuEntry(), new MouseEventDetails()) {
+        };
+
+        int iterations = 100000;
+        for (int i = 0; i < iterations; ++i) {
+            treeClickListener.itemClick(treeClick);
+            item.select();
+            userItem.select();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; ++i) {
+            treeClickListener.itemClick(treeClick);
+            item.select();
+            userItem.select();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(6 * iterations, clicks[0]);
+        assertSame(item, sideMenu.getSelectedMenuItem().get());
+        // Allows for the measurement itself, not a single byte per dispatch
+        assertTrue("Allocated " + allocated + " bytes",
+                allocated < iterations);
+    }
+
+    @Test
+    public void contentMenuItemCreatesContentOnce() {
+        SideMenu sideMenu = new SideMenu();
+        int[] created = new int[1];
+        MenuRegistration item = sideMenu.addContentMenuItem("item", () -> {
+            ++created[0];
+            return new Label("content");
+        });
+        MenuRegistration sub = sideMenu.addMenuItem("parent", null)
+                .addContentSubMenu("sub", () -> new Label("sub"));
+        assertEquals(0, created[0]);
+
+        item.select();
+        sub.select();
+        item.select();
+        assertEquals(1, created[0]);
+    }
+
+    @Test
+    public void weakContentRecreatedAfterCollection() {
+        SideMenu sideMenu = new SideMenu();
+        sideMenu.setContentRetention(SideMenu.ContentRetention.WEAK);
+        List<WeakReference<Component>> created = new ArrayList<>();
+        MenuRegistration item = sideMenu.addContentMenuItem("item", () -> {
+            Label content = new Label("content");
+            created.add(new WeakReference<>(content));
+            return content;
+        });
+        MenuRegistration other = sideMenu.addContentMenuItem("other",
+                () -> new Label("other"));
+
+        item.select();
+        other.select();
+        assertEquals(1, created.size());
+        for (int i = 0; i < 100 && created.get(0).get() != null; ++i) {
+            System.gc();
+        }
+        Assume.assumeTrue("Content was not collected",
+                created.get(0).get() == null);
+
+        item.select();
+        assertEquals(2, created.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void contentClickHandlerOutsideSideMenu() {
+        new SideMenu().addContentMenuItem("item", () -> new Label("content"))
+                .getMenuEntry().getClickHandler().click();
+    }
+
+    @Test
+    public void navigationUsesNavigatorOfSideMenuUI() {
+        SideMenu sideMenu = new SideMenu();
+        MenuRegistration item = sideMenu.addNavigation("item", "target");
+        UI ui = attach(sideMenu, mockSession(), PushMode.DISABLED);
+        Navigator navigator = mock(Navigator.class);
+        ui.setNavigator(navigator);
+
+        // Selected without a current UI, e.g. from a background thread
+        item.select();
+        verify(navigator, times(1)).navigateTo("target");
+    }
+
+    @Test
+    public void navigationClickHandlerUsesCurrentUI() {
+        SideMenu sideMenu = new SideMenu();
+        MenuRegistration item = sideMenu.addNavigation("item", "target");
+        UI ui = attach(new SideMenu(), mockSession(), PushMode.DISABLED);
+        Navigator navigator = mock(Navigator.class);
+        ui.setNavigator(navigator);
+
+        UI.setCurrent(ui);
+        try {
+            item.getMenuEntry().getClickHandler().click();
+        } finally {
+            UI.setCurrent(null);
+        }
+        verify(navigator, times(1)).navigateTo("target");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void navigationClickHandlerWithoutCurrentUI() {
+        new SideMenu().addNavigation("item", "target").getMenuEntry()
+                .getClickHandler().click();
+    }
+
+    @Test
+    public void sharedModelEntriesInAllMenus() {
+        SideMenuModel model = new SideMenuModel();
+        SideMenu first = new SideMenu(model);
+        SideMenu second = new SideMenu(model);
+        assertTrue(model.isEmpty());
+
+        MenuRegistration item = first.addMenuItem("item", clickHandler);
+        List<MenuRegistration> found = second.findMenuItems("item", 10);
+        assertEquals(1, found.size());
+        assertSame(item.getMenuEntry(), found.get(0).getMenuEntry());
+        found.get(0).select();
+        verify(clickHandler, times(1)).click();
+
+        item.getMenuEntry().setMenuText("renamed");
+        assertEquals("renamed", second.findMenuItems("ren", 10).get(0)
+                .getMenuEntry().getMenuText());
+
+        item.remove();
+        assertTrue(model.isEmpty());
+        assertTrue(second.findMenuItems("", 10).isEmpty());
+    }
+
+    @Test
+    public void sharedModelChangesShownInAllAttachedMenus() {
+        VaadinSession session = mockSession();
+        SideMenuModel model = new SideMenuModel();
+        Tree<MenuEntry> firstTree = new Tree<>();
+        Tree<MenuEntry> secondTree = new Tree<>();
+        SideMenu first = new SideMenu(model, firstTree);
+        SideMenu second = new SideMenu(model, secondTree);
+        MenuRegistration parent = first.addMenuItem("parent", clickHandler);
+        parent.addSubMenu("child", clickHandler);
+        UI firstUI = attach(first, session, PushMode.DISABLED);
+        UI secondUI = attach(second, session, PushMode.DISABLED);
+        ConnectorTracker firstTracker = firstUI.getConnectorTracker();
+        ConnectorTracker secondTracker = secondUI.getConnectorTracker();
+        DataCommunicator<?> firstCommunicator = dataCommunicator(firstTree);
+        DataCommunicator<?> secondCommunicator = dataCommunicator(
+                secondTree);
+
+        // Send the initial rows so that they can be refreshed
+        firstCommunicator.beforeClientResponse(true);
+        secondCommunicator.beforeClientResponse(true);
+        firstTracker.markAllConnectorsClean();
+        secondTracker.markAllConnectorsClean();
+
+        parent.getMenuEntry().setMenuText("renamed");
+        runPendingAccessTasks();
+        assertTrue(firstTracker.isDirty(firstCommunicator));
+        assertTrue(secondTracker.isDirty(secondCommunicator));
+
+        MenuRegistration secondChild = second.findMenuItems("child", 1)
+                .get(0);
+        secondChild.select();
+        firstTracker.markAllConnectorsClean();
+        secondTracker.markAllConnectorsClean();
+
+        first.findMenuItems("child", 1).get(0).remove();
+        runPendingAccessTasks();
+        assertTrue(firstTracker.isDirty(firstCommunicator));
+        assertTrue(secondTracker.isDirty(secondCommunicator));
+        assertFalse(second.getSelectedMenuItem().isPresent());
+        assertTrue(second.findMenuItems("child", 10).isEmpty());
+    }
+
+    @Test
+    public void sharedModelManualPushOncePerBatch() {
+        VaadinSession session = mockSession();
+        SideMenuModel model = new SideMenuModel();
+        SideMenu first = new SideMenu(model);
+        SideMenu second = new SideMenu(model);
+        MenuRegistration item = first.addMenuItem("item", clickHandler);
+        TestUI firstUI = attach(first, session, PushMode.DISABLED);
+        TestUI secondUI = attach(second, session, PushMode.MANUAL);
+
+        // Changes are made in a request of the first UI
+        UI.setCurrent(firstUI);
+        try {
+            item.getMenuEntry().setMenuText("renamed");
+            item.getMenuEntry().setMenuIcon(VaadinIcons.HOME);
+            first.addMenuItem("other", clickHandler);
+            item.remove();
+            runPendingAccessTasks();
+            assertEquals(0, firstUI.pushes);
+            assertEquals(1, secondUI.pushes);
+
+            first.addMenuItem("another", clickHandler);
+            first.findMenuItems("other", 1).get(0).getMenuEntry()
+                    .setMenuText("renamed other");
+            runPendingAccessTasks();
+            assertEquals(2, secondUI.pushes);
+        } finally {
+            UI.setCurrent(null);
+        }
+    }
+
+    @Test
+    public void sharedModelReattachDropsRemovedEntries() {
+        VaadinSession session = mockSession();
+        SideMenuModel model = new SideMenuModel();
+        SideMenu first = new SideMenu(model);
+        SideMenu second = new SideMenu(model);
+        MenuRegistration item = first.addMenuItem("item", clickHandler);
+        attach(first, session, PushMode.DISABLED);
+        UI secondUI = attach(second, session, PushMode.DISABLED);
+        MenuRegistration secondItem = second.findMenuItems("item", 1).get(0);
+        secondItem.select();
+
+        secondUI.setContent(null);
+        item.remove();
+        first.addMenuItem("item", clickHandler);
+        secondUI.setContent(second);
+
+        assertFalse(second.getSelectedMenuItem().isPresent());
+        assertNotSame(secondItem, second.findMenuItems("item", 1).get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sharedModelDuplicate() {
+        SideMenuModel model = new SideMenuModel();
+        new SideMenu(model).addMenuItem("item", clickHandler);
+        new SideMenu(model).addMenuItem("item", clickHandler);
+    }
+
+    @Test
+    public void sharedModelContentPerMenu() {
+        SideMenuModel model = new SideMenuModel();
+        SideMenu first = new SideMenu(model);
+        SideMenu second = new SideMenu(model);
+        int[] created = new int[1];
+        first.addContentMenuItem("item", () -> {
+            ++created[0];
+            return new Label("content");
+        }).select();
+        second.findMenuItems("item", 1).get(0).select();
+        second.findMenuItems("item", 1).get(0).select();
+        assertEquals(2, created[0]);
+    }
+
+    private static DataCommunicator<?> dataCommunicator(Tree<?> tree) {
+        // The items of the tree are shown by a tree grid
+        return ((TreeGrid<?>) tree.iterator().next()).getDataCommunicator();
+    }
+
+    @SuppressWarnings("deprecation")
+    private VaadinSession mockSession() {
+        VaadinSession session = mock(VaadinSession.class);
+        AtomicInteger connectorIds = new AtomicInteger();
+        when(session.hasLock()).thenReturn(true);
+        when(session.getLocale()).thenReturn(Locale.ENGLISH);
+        when(session.access(any(Runnable.class))).thenAnswer(invocation -> {
+            accessTasks.add((Runnable) invocation.getArguments()[0]);
+            return null;
+        });
+        // Connector ids are only created by the session
+        when(session.createConnectorId(any(ClientConnector.class)))
+                .thenAnswer(invocation -> String
+                        .valueOf(connectorIds.incrementAndGet()));
+        return session;
+    }
+
+    /**
+     * UI with a mocked push configuration and push connection that counts
+     * pushes. Enabling push for real would need a service.
+     */
+    private static final class TestUI extends UI {
+        private final PushMode pushMode;
+        private final PushConfiguration pushConfiguration = mock(
+                PushConfiguration.class);
+        private final PushConnection pushConnection = mock(
+                PushConnection.class);
+        private int pushes;
+
+        private TestUI(PushMode pushMode) {
+            this.pushMode = pushMode;
+            when(pushConfiguration.getPushMode()).thenReturn(pushMode);
+            when(pushConnection.isConnected()).thenReturn(true);
+        }
+
+        @Override
+        protected void init(VaadinRequest request) {
+        }
+
+        @Override
+        public PushConfiguration getPushConfiguration() {
+            return pushConfiguration;
+        }
+
+        @Override
+        public PushConnection getPushConnection() {
+            return pushMode != null && pushMode.isEnabled() ? pushConnection
+                    : null;
+        }
+
+        @Override
+        public void push() {
+            ++pushes;
+        }
+    }
+
+    /**
+     * Runs the queued access tasks, including tasks queued by them, like a
+     * response does before writing any connector.
+     */
+    private void runPendingAccessTasks() {
+        while (!accessTasks.isEmpty()) {
+            accessTasks.poll().run();
+        }
+    }
+
+    private static TestUI attach(SideMenu sideMenu, VaadinSession session,
+            PushMode pushMode) {
+        TestUI ui = new TestUI(pushMode);
+        ui.setSession(session);
+        ui.setContent(sideMenu);
+        return ui;
+    }
 }
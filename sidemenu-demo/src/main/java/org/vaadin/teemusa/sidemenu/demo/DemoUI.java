@@ -81,12 +81,11 @@ public class DemoUI extends UI {
             content.addComponent(new Label("A layout"));
             sideMenu.setContent(content);
         });
-        sideMenu.addMenuItem("Entry With Icon", VaadinIcons.ACCESSIBILITY,
-                () -> {
-                    VerticalLayout content = new VerticalLayout();
-                    content.addComponent(new Label("Another layout"));
-                    sideMenu.setContent(content);
-                })
+
+        // Content created on first selection and reused afterwards
+        sideMenu.addContentMenuItem("Entry With Icon",
+                VaadinIcons.ACCESSIBILITY,
+                () -> new VerticalLayout(new Label("Another layout")))
                 // Navigator has done its own setup, any menu can be selected.
                 .select();
 